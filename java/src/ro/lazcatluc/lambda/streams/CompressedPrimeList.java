@@ -0,0 +1,175 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ro.lazcatluc.lambda.streams;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Append-only ordered list of primes using about one byte per prime.
+ * <p/>
+ * Apart from 2, every prime is stored as half the gap to the previous
+ * one, encoded as a varint (7 bits per byte, the high bit marking that
+ * more bytes follow). Every {@link #INDEX_STEP} primes the value and
+ * the byte offset are saved in a sparse index, so that random access
+ * decodes at most INDEX_STEP - 1 gaps.
+ *
+ * @author Catalin
+ */
+public final class CompressedPrimeList implements Iterable<Long> {
+
+    /**
+     * The number of primes between two entries of the sparse index.
+     */
+    public static final int INDEX_STEP = 64;
+
+    private byte[] gaps = new byte[1024];
+    private int length = 0;
+    private long[] indexValues = new long[16];
+    private int[] indexOffsets = new int[16];
+    private int size = 0;
+    private long last = 0;
+
+    /**
+     * Appends a prime at the end of the list.
+     *
+     * @param prime a prime higher than the last prime of the list,
+     *  which must be 3 if the last prime is 2
+     */
+    public void add(long prime) {
+        if (prime <= last || (size > 0 && (prime & 1) == 0) || (last == 2 && prime != 3)) {
+            throw new IllegalArgumentException(prime + " cannot follow " + last);
+        }
+        if (size % INDEX_STEP == 0) {
+            int entry = size / INDEX_STEP;
+            if (entry == indexValues.length) {
+                indexValues = Arrays.copyOf(indexValues, entry * 2);
+                indexOffsets = Arrays.copyOf(indexOffsets, entry * 2);
+            }
+            indexValues[entry] = prime;
+            indexOffsets[entry] = length;
+        } else {
+            /**
+             * 2 -> 3 is the only odd gap; it is stored as 0 and
+             * decoded back through the value of the previous prime.
+             * This is why add only accepts 3 right after 2.
+             */
+            long half = (prime - last) >>> 1;
+            if (length + 10 > gaps.length) {
+                gaps = Arrays.copyOf(gaps, gaps.length * 2);
+            }
+            while (half >= 0x80) {
+                gaps[length++] = (byte) (half | 0x80);
+                half >>>= 7;
+            }
+            gaps[length++] = (byte) half;
+        }
+        last = prime;
+        size++;
+    }
+
+    /**
+     * @return the number of primes in the list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the highest prime in the list, or 0 if the list is empty
+     */
+    public long last() {
+        return last;
+    }
+
+    /**
+     * @param index the position of the prime
+     * @return the prime at the given position
+     */
+    public long get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index + " of " + size);
+        }
+        Cursor cursor = new Cursor(index / INDEX_STEP);
+        long prime = cursor.nextLong();
+        for (int i = index % INDEX_STEP; i > 0; i--) {
+            prime = cursor.nextLong();
+        }
+        return prime;
+    }
+
+    /**
+     * Trial division by the primes in the list, which must hold
+     * the consecutive primes starting at 2.
+     *
+     * @param n the number to test, higher than 1
+     * @return whether n is prime
+     * @throws IllegalStateException if the list does not reach
+     *  the square root of n
+     */
+    public boolean isPrime(long n) {
+        Cursor primes = new Cursor(0);
+        while (primes.hasNext()) {
+            long prime = primes.nextLong();
+            if (prime * prime > n) {
+                return true;
+            }
+            if (n % prime == 0) {
+                return n == prime;
+            }
+        }
+        throw new IllegalStateException("The list stops at " + last + ", too low to test " + n);
+    }
+
+    /**
+     * The iterator sees the primes appended while iterating.
+     *
+     * @return an iterator decoding the primes in order
+     */
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new Cursor(0);
+    }
+
+    private final class Cursor implements PrimitiveIterator.OfLong {
+
+        private int index;
+        private int offset;
+        private long prime;
+
+        Cursor(int indexEntry) {
+            index = indexEntry * INDEX_STEP;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < size;
+        }
+
+        @Override
+        public long nextLong() {
+            if (index >= size) {
+                throw new NoSuchElementException();
+            }
+            if (index % INDEX_STEP == 0) {
+                prime = indexValues[index / INDEX_STEP];
+                offset = indexOffsets[index / INDEX_STEP];
+            } else {
+                long half = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = gaps[offset++];
+                    half |= (long) (b & 0x7f) << shift;
+                    shift += 7;
+                } while (b < 0);
+                prime = half == 0 ? prime + 1 : prime + (half << 1);
+            }
+            index++;
+            return prime;
+        }
+    }
+}
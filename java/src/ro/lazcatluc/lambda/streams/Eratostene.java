@@ -4,6 +4,10 @@
  */
 package ro.lazcatluc.lambda.streams;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentSkipListSet;
 
@@ -68,8 +72,19 @@ public class Eratostene {
     }
     
     public static LazyListStream<Long> eratosteneWithSave() {
-        IStream<Long> naturals = nat();
-        return new LazyListStream<>(list -> {
+        return eratosteneWithSave(Collections.emptyList());
+    }
+
+    /**
+     * Continues the stream of saved primes from primes that
+     * have already been computed, e.g. restored from a checkpoint.
+     *
+     * @param saved the first primes, in order and without gaps
+     * @return the stream of prime numbers starting with saved
+     */
+    public static LazyListStream<Long> eratosteneWithSave(List<Long> saved) {
+        IStream<Long> naturals = nat(saved.isEmpty() ? 1l : saved.get(saved.size() - 1));
+        return LazyListStream.withContents(saved, list -> {
             Long head = naturals.next();
             for (Long prime : list) {
                 if (head % prime == 0) {
@@ -84,6 +99,48 @@ public class Eratostene {
         });
     }
     
+    /**
+     * Same as eratosteneWithSave, but the saved primes are kept
+     * in a compressed list using about a byte per prime. The
+     * stream first reads the primes already in the list, then
+     * appends the ones it computes.
+     *
+     * @param savedPrimes the consecutive primes from 2 computed so far
+     * @return the stream of prime numbers
+     */
+    public static IStream<Long> eratosteneCompressed(CompressedPrimeList savedPrimes) {
+        return new IStream<Long>() {
+
+            private final PrimitiveIterator.OfLong saved = savedPrimes.iterator();
+            private long root;
+            {
+                next();
+            }
+
+            @Override
+            public Long root() {
+                return root;
+            }
+
+            @Override
+            public Long next() {
+                if (!saved.hasNext()) {
+                    if (savedPrimes.size() == 0) {
+                        savedPrimes.add(2);
+                    } else {
+                        long head = savedPrimes.last() == 2 ? 3 : savedPrimes.last() + 2;
+                        while (!savedPrimes.isPrime(head)) {
+                            head += 2;
+                        }
+                        savedPrimes.add(head);
+                    }
+                }
+                root = saved.nextLong();
+                return root;
+            }
+        };
+    }
+
     public static IStream<Long> eratosteneWithoutSaveSingleThread(LazyListStream<Long> savedPrimes, Long first) {
         return new IStream<Long>() {
 
@@ -303,34 +360,86 @@ public class Eratostene {
         };
     }
 
-    static void analyzeEratostene() {
+    private static final int DEFAULT_CHECKPOINT_INTERVAL = 100;
+
+    static void analyzeEratostene() throws IOException {
+        analyzeEratostene(null, 0);
+    }
+
+    /**
+     * Prints every 10000th prime, saving a checkpoint to the given
+     * file every checkpointInterval steps. If the file already exists
+     * the analysis resumes from it and continues the output exactly
+     * where the interrupted run stopped.
+     *
+     * @param checkpointFile the checkpoint file, or null to disable checkpoints
+     * @param checkpointInterval the number of steps between two checkpoints
+     * @throws IOException if the checkpoint cannot be read or written
+     */
+    static void analyzeEratostene(Path checkpointFile, int checkpointInterval) throws IOException {
+        if (checkpointFile != null && checkpointInterval < 1) {
+            throw new IllegalArgumentException("The checkpoint interval must be at least 1 step, not " + checkpointInterval);
+        }
         long start = System.currentTimeMillis();
         final int step = 10000;
         final int withSaveStep = 99;
         final int totalSteps = 400000;
-        IStream<Long> eratostene = eratosteneWithSave().every(step);
-        for (long i = 1; i <= withSaveStep; i++) {
-            eratostene.next();
-            markSignificantPrime(i, step, eratostene, start);
+        EratosteneCheckpoint checkpoint = null;
+        if (checkpointFile != null && Files.exists(checkpointFile)) {
+            checkpoint = EratosteneCheckpoint.load(checkpointFile);
+            System.err.println("Resuming after step " + checkpoint.getStep());
+        }
+        long i = checkpoint == null ? 1 : checkpoint.getStep() + 1;
+        LazyListStream<Long> eratosteneWithSave = checkpoint == null ? eratosteneWithSave() : eratosteneWithSave(checkpoint.getSavedPrimes());
+        IStream<Long> eratosteneWithoutSave;
+        if (i <= withSaveStep) {
+            IStream<Long> eratostene = eratosteneWithSave.skip((int) ((i - 1) * step)).every(step);
+            for (; i <= withSaveStep; i++) {
+                eratostene.next();
+                markSignificantPrime(i, step, eratostene, start);
+                saveCheckpoint(checkpointFile, checkpointInterval, i, eratostene.root(), eratosteneWithSave);
+            }
+            Long first = eratosteneWithSave.root();
+            eratosteneWithSave.reset();
+            System.out.println("Switching to eratosteneWithoutSaveSingleThread");
+            eratosteneWithoutSave = eratosteneWithoutSaveSingleThread(eratosteneWithSave,first).skip(step-1).every(step);
+        } else {
+            /**
+             * The checkpointed root is a prime, so starting the
+             * naturals right before it makes it the head again.
+             */
+            eratosteneWithoutSave = eratosteneWithoutSaveSingleThread(eratosteneWithSave, checkpoint.getRoot() - 1).every(step);
+            eratosteneWithoutSave.next();
         }
-        LazyListStream<Long> eratosteneWithSave = (LazyListStream<Long>)(eratostene.original());
-        Long first = eratosteneWithSave.root();
-        eratosteneWithSave.reset();
-        System.out.println("Switching to eratosteneWithoutSaveSingleThread");
-        IStream<Long> eratosteneWithoutSave = eratosteneWithoutSaveSingleThread(eratosteneWithSave,first).skip(step-1).every(step);
-        for (long i = withSaveStep+1; i < totalSteps; i++) {
+        for (; i < totalSteps; i++) {
             markSignificantPrime(i, step, eratosteneWithoutSave, start);
+            saveCheckpoint(checkpointFile, checkpointInterval, i, eratosteneWithoutSave.root(), eratosteneWithSave);
             eratosteneWithoutSave.next();
         }
     }
 
+    private static void saveCheckpoint(Path file, int interval, long i, Long root, LazyListStream<Long> savedPrimes) throws IOException {
+        if (file != null && i % interval == 0) {
+            new EratosteneCheckpoint(i, root, savedPrimes.contents()).save(file);
+        }
+    }
+
     protected static void markSignificantPrime(long i, final int step, IStream<Long> eratostene, long start) {
         System.out.println("The " + (i * step) + "th prime number is " +
                 eratostene.root() + " obtained in " +
                 ((System.currentTimeMillis() - start) / 1000) + "s");
     }
 
-    public static void main(String[] args) {
-        analyzeEratostene();
+    /**
+     * @param args optionally the checkpoint file followed by the number
+     *  of steps between checkpoints, 100 by default
+     * @throws IOException if the checkpoint cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0) {
+            analyzeEratostene(Paths.get(args[0]), args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CHECKPOINT_INTERVAL);
+        } else {
+            analyzeEratostene();
+        }
     }
 }
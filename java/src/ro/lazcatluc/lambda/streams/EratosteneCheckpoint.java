@@ -0,0 +1,171 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ro.lazcatluc.lambda.streams;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Snapshot of a long-running prime generation: the number of
+ * steps already reported, the prime reached at that step and the
+ * saved primes used for sieving.
+ * <p/>
+ * The saved primes are stored as gaps between consecutive primes,
+ * two bytes each, which is enough for every prime gap below 2^64.
+ *
+ * @author Catalin
+ */
+public final class EratosteneCheckpoint {
+
+    private static final int MAGIC = 0x50524d43;
+    private static final int PRIMES_MAGIC = 0x50524d50;
+    private static final int MAX_GAP = 0xffff;
+
+    private final long step;
+    private final long root;
+    private final List<Long> savedPrimes;
+
+    public EratosteneCheckpoint(long step, long root, List<Long> savedPrimes) {
+        this.step = step;
+        this.root = root;
+        this.savedPrimes = Collections.unmodifiableList(savedPrimes);
+    }
+
+    /**
+     * @return the last step that was completed before the snapshot
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * @return the head of the generator at the completed step
+     */
+    public long getRoot() {
+        return root;
+    }
+
+    /**
+     * @return the ordered primes used for sieving
+     */
+    public List<Long> getSavedPrimes() {
+        return savedPrimes;
+    }
+
+    /**
+     * Writes the checkpoint next to the target file and then moves
+     * it in place, so a crash while saving keeps the previous
+     * checkpoint intact.
+     * <p/>
+     * The saved primes go to a separate file, see {@link #primesFile(Path)},
+     * which is only rewritten when they have changed since the last save.
+     * It is moved in place first; since the saved primes only grow, the
+     * previous checkpoint still loads from its beginning if the process
+     * dies before the checkpoint file is moved in place as well.
+     *
+     * @param file the checkpoint file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        Path primes = primesFile(file);
+        long last = savedPrimes.isEmpty() ? 0 : savedPrimes.get(savedPrimes.size() - 1);
+        if (!holdsPrimes(primes, savedPrimes.size(), last)) {
+            Path tmp = primes.resolveSibling(primes.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(PRIMES_MAGIC);
+                out.writeInt(savedPrimes.size());
+                out.writeLong(last);
+                long previous = 0;
+                for (Long prime : savedPrimes) {
+                    long gap = prime - previous;
+                    if (gap <= 0 || gap > MAX_GAP) {
+                        throw new IllegalStateException("Saved primes are not ordered at " + prime);
+                    }
+                    out.writeShort((int) gap);
+                    previous = prime;
+                }
+            }
+            Files.move(tmp, primes, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(step);
+            out.writeLong(root);
+            out.writeInt(savedPrimes.size());
+            out.writeLong(last);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param file the checkpoint file
+     * @return the file holding the saved primes of the checkpoint
+     */
+    public static Path primesFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".primes");
+    }
+
+    private static boolean holdsPrimes(Path primes, int size, long last) throws IOException {
+        if (!Files.exists(primes)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(primes)))) {
+            return in.readInt() == PRIMES_MAGIC && in.readInt() == size && in.readLong() == last;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads a checkpoint written by {@link #save(Path)}.
+     *
+     * @param file the checkpoint file
+     * @return the checkpoint
+     * @throws IOException if the files cannot be read or are not a checkpoint
+     */
+    public static EratosteneCheckpoint load(Path file) throws IOException {
+        long step;
+        long root;
+        int size;
+        long last;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a checkpoint file");
+            }
+            step = in.readLong();
+            root = in.readLong();
+            size = in.readInt();
+            last = in.readLong();
+        }
+        Path primes = primesFile(file);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(primes)))) {
+            if (in.readInt() != PRIMES_MAGIC || in.readInt() < size) {
+                throw new IOException(primes + " does not hold the primes of " + file);
+            }
+            in.readLong();
+            List<Long> savedPrimes = new ArrayList<>(size);
+            long previous = 0;
+            for (int i = 0; i < size; i++) {
+                previous += in.readUnsignedShort();
+                savedPrimes.add(previous);
+            }
+            if (previous != last) {
+                throw new IOException(primes + " does not hold the primes of " + file);
+            }
+            return new EratosteneCheckpoint(step, root, savedPrimes);
+        }
+    }
+}
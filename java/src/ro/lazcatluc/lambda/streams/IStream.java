@@ -191,6 +191,22 @@ public interface IStream<T> extends Iterator<T> {
 		};
 	}
     
+    /**
+     * Caches the output of this stream so that it can be read
+     * by several cursors (see {@link MemoizedStream#newInstance()})
+     * without computing any element twice.
+     * 
+     * The state of the original stream changes as the cursors
+     * read past the cached elements.
+     * 
+     * @param policy which cached elements are kept
+     * 
+     * @return the first cursor over the cached stream
+     */
+	default MemoizedStream<T> memoize(final MemoizedStream.Policy policy) {
+		return new MemoizedStream<>(this, policy);
+	}
+	
     /**
      * 
      * @return the stream from which this stream has originated
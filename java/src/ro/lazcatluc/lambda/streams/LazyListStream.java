@@ -4,13 +4,23 @@
  */
 package ro.lazcatluc.lambda.streams;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 /**
+ * Stream memoizing its elements in a list shared by all the
+ * instances obtained through {@link #newInstance()}.
+ * <p/>
+ * Any number of threads may read the shared list concurrently
+ * without locking. A thread reading past its end claims the
+ * extension with a compare-and-set; the others wait for the
+ * extension to be published instead of duplicating it.
  *
  * @author Catalin
  */
@@ -19,41 +29,48 @@ public final class LazyListStream<T> implements IStream<T>, Iterable<T> {
     /**
      * The list backing this stream
      */
-    private final List<T> streamQueue;
+    private final SharedList<T> streamQueue;
     /**
      * The current position in the stream
      */
-    
+
     private int currentPosition = 0;
-    
-    /**
-     * The contract of this function is that
-     * it will always be called from a synchronized context
-     * of the list.
-     */
-    private final Consumer<List<T>> computeNext;
 
     public LazyListStream(Consumer<List<T>> computeNext) {
-        streamQueue = Collections.synchronizedList(new ArrayList<>());
-        this.computeNext = computeNext;
+        streamQueue = new SharedList<>(computeNext);
     }
 
-    private LazyListStream(List<T> queue, Consumer<List<T>> computeNext) {
+    private LazyListStream(SharedList<T> queue) {
         this.streamQueue = queue;
-        this.computeNext = computeNext;
     }
 
-    public LazyListStream newInstance() {
-        return new LazyListStream(streamQueue, computeNext);
+    /**
+     * Builds a stream whose backing list already contains the given
+     * elements, e.g. restored from a checkpoint. The cursor starts
+     * at the first element.
+     *
+     * @param contents the elements the stream starts with
+     * @param computeNext the function appending the following elements
+     * @return the pre-filled stream
+     */
+    public static <T> LazyListStream<T> withContents(Collection<? extends T> contents, Consumer<List<T>> computeNext) {
+        SharedList<T> queue = new SharedList<>(computeNext);
+        for (T element : contents) {
+            queue.append(element);
+        }
+        return new LazyListStream<>(queue);
+    }
+
+    /**
+     * @return a new cursor, starting at the first element,
+     *  over the same backing list
+     */
+    public LazyListStream<T> newInstance() {
+        return new LazyListStream<>(streamQueue);
     }
 
     @Override
     public T root() {
-        
-            while (currentPosition > streamQueue.size() - 1) {
-                computeNext.accept(streamQueue);
-            }
-        
         return streamQueue.get(currentPosition);
     }
 
@@ -78,8 +95,131 @@ public final class LazyListStream<T> implements IStream<T>, Iterable<T> {
         currentPosition = 0;
     }
 
+    /**
+     * @return a copy of the elements computed so far
+     */
+    public List<T> contents() {
+        return streamQueue.published();
+    }
+
+    /**
+     * Iterates the whole stream from its first element, independently
+     * of the current position; the iterator never runs out, computing
+     * the next elements when reading past the end of the list.
+     */
     @Override
     public Iterator<T> iterator() {
-        return streamQueue.listIterator();
+        return new Iterator<T>() {
+            private int position = 0;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public T next() {
+                return streamQueue.get(position++);
+            }
+        };
+    }
+
+    /**
+     * Append-only list stored in fixed-size chunks, so that
+     * appending never moves the published elements.
+     * <p/>
+     * An element is written before the volatile size is increased,
+     * so readers never see an index below size that is not filled.
+     */
+    private static final class SharedList<T> extends AbstractList<T> {
+
+        private static final int CHUNK_BITS = 10;
+        private static final int CHUNK = 1 << CHUNK_BITS;
+
+        /**
+         * The contract of this function is that it is only called by
+         * the thread holding the extension claim, and that it only
+         * appends to the list it is given.
+         */
+        private final Consumer<List<T>> computeNext;
+        private final AtomicReference<Thread> extender = new AtomicReference<>();
+        private volatile Object[][] chunks = new Object[16][];
+        private volatile int size = 0;
+
+        SharedList(Consumer<List<T>> computeNext) {
+            this.computeNext = computeNext;
+        }
+
+        /**
+         * Reads an element, extending the list up to it if needed.
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            if (index >= size) {
+                extendTo(index);
+            }
+            return (T) chunks[index >>> CHUNK_BITS][index & (CHUNK - 1)];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Only available to computeNext, from the extending thread.
+         */
+        @Override
+        public boolean add(T element) {
+            if (extender.get() != Thread.currentThread()) {
+                throw new IllegalStateException("Only the extending thread may append");
+            }
+            append(element);
+            return true;
+        }
+
+        void append(T element) {
+            int n = size;
+            Object[][] directory = chunks;
+            int chunk = n >>> CHUNK_BITS;
+            if (chunk == directory.length) {
+                directory = Arrays.copyOf(directory, chunk * 2);
+            }
+            if (directory[chunk] == null) {
+                directory[chunk] = new Object[CHUNK];
+                chunks = directory;
+            }
+            directory[chunk][n & (CHUNK - 1)] = element;
+            size = n + 1;
+        }
+
+        private void extendTo(int index) {
+            Thread current = Thread.currentThread();
+            while (index >= size) {
+                if (extender.compareAndSet(null, current)) {
+                    try {
+                        while (index >= size) {
+                            computeNext.accept(this);
+                        }
+                    } finally {
+                        extender.set(null);
+                    }
+                } else if (extender.get() == current) {
+                    throw new IllegalStateException("computeNext read past the end of the list");
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+
+        List<T> published() {
+            int n = size;
+            List<T> ret = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                ret.add(get(i));
+            }
+            return ret;
+        }
     }
 }
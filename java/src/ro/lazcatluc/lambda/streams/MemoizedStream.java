@@ -0,0 +1,259 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ro.lazcatluc.lambda.streams;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Cursor over the cached output of a stream, built by
+ * {@link IStream#memoize(Policy)}. All the cursors obtained through
+ * {@link #newInstance()} share the same cache, so the source stream
+ * computes every element once, however many cursors read it.
+ * <p/>
+ * The cache keeps the elements according to its {@link Policy}.
+ * A cursor reading an element that has already been evicted fails
+ * with an IllegalStateException.
+ *
+ * @author Catalin
+ */
+public final class MemoizedStream<T> implements IStream<T> {
+
+    /**
+     * Which cached elements are kept.
+     */
+    public static final class Policy {
+
+        private final int window;
+        private final boolean slowestCursor;
+
+        private Policy(int window, boolean slowestCursor) {
+            this.window = window;
+            this.slowestCursor = slowestCursor;
+        }
+
+        /**
+         * @return the policy keeping every element forever
+         */
+        public static Policy unbounded() {
+            return new Policy(Integer.MAX_VALUE, false);
+        }
+
+        /**
+         * @param size the number of elements to keep, at least 1
+         * @return the policy keeping the last size elements
+         */
+        public static Policy window(int size) {
+            if (size < 1) {
+                throw new IllegalArgumentException("The window must hold at least one element");
+            }
+            return new Policy(size, false);
+        }
+
+        /**
+         * @return the policy dropping the elements every live
+         *  cursor has already passed
+         */
+        public static Policy slowestCursor() {
+            return new Policy(Integer.MAX_VALUE, true);
+        }
+    }
+
+    /**
+     * Snapshot of the cache counters.
+     */
+    public static final class Statistics {
+
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+
+        Statistics(long hits, long misses, long evictions) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        /**
+         * @return the number of times a cursor moved onto
+         *  an element which was already cached
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * @return the number of elements computed by the source stream
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return the number of elements dropped from the cache
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions;
+        }
+    }
+
+    private final Cache<T> cache;
+    /**
+     * Guarded by the cache, which reads the positions of all
+     * the cursors for the slowest cursor policy.
+     */
+    private long position;
+
+    MemoizedStream(IStream<T> source, Policy policy) {
+        this(new Cache<>(source, policy), 0);
+    }
+
+    private MemoizedStream(Cache<T> cache, long position) {
+        this.cache = cache;
+        this.position = position;
+        cache.register(this);
+    }
+
+    /**
+     * @return a new cursor over the same cache, starting at
+     *  the oldest element still cached
+     */
+    public MemoizedStream<T> newInstance() {
+        return new MemoizedStream<>(cache, cache.oldest());
+    }
+
+    /**
+     * @return the counters of the cache shared by all the cursors
+     */
+    public Statistics statistics() {
+        return cache.statistics();
+    }
+
+    @Override
+    public T root() {
+        return cache.get(this);
+    }
+
+    @Override
+    public T next() {
+        return cache.next(this);
+    }
+
+    /**
+     * Ring buffer of the cached elements, shared by the cursors.
+     */
+    private static final class Cache<T> {
+
+        private final IStream<T> source;
+        private final Policy policy;
+        private final List<WeakReference<MemoizedStream<T>>> cursors = new ArrayList<>();
+        private Object[] ring = new Object[16];
+        private int head = 0;
+        private int count = 0;
+        /**
+         * The position of the oldest cached element.
+         */
+        private long base = 0;
+        private boolean started = false;
+        private long hits = 0;
+        private long misses = 0;
+        private long evictions = 0;
+
+        Cache(IStream<T> source, Policy policy) {
+            this.source = source;
+            this.policy = policy;
+        }
+
+        synchronized void register(MemoizedStream<T> cursor) {
+            cursors.add(new WeakReference<>(cursor));
+        }
+
+        synchronized long oldest() {
+            return base;
+        }
+
+        synchronized T get(MemoizedStream<T> cursor) {
+            return element(cursor.position);
+        }
+
+        synchronized T next(MemoizedStream<T> cursor) {
+            cursor.position++;
+            if (cursor.position >= base && cursor.position < base + count) {
+                hits++;
+            }
+            evictPassed();
+            return element(cursor.position);
+        }
+
+        @SuppressWarnings("unchecked")
+        private T element(long position) {
+            if (position < base) {
+                throw new IllegalStateException("Element " + position + " has been evicted from the cache");
+            }
+            while (position >= base + count) {
+                misses++;
+                if (started) {
+                    source.next();
+                }
+                started = true;
+                append(source.root());
+                while (count > policy.window) {
+                    evictOldest();
+                }
+            }
+            return (T) ring[(int) ((head + position - base) % ring.length)];
+        }
+
+        private void evictPassed() {
+            if (!policy.slowestCursor) {
+                return;
+            }
+            long slowest = Long.MAX_VALUE;
+            for (Iterator<WeakReference<MemoizedStream<T>>> it = cursors.iterator(); it.hasNext();) {
+                MemoizedStream<T> cursor = it.next().get();
+                if (cursor == null) {
+                    it.remove();
+                } else {
+                    slowest = Math.min(slowest, cursor.position);
+                }
+            }
+            while (count > 0 && base < slowest) {
+                evictOldest();
+            }
+        }
+
+        synchronized Statistics statistics() {
+            return new Statistics(hits, misses, evictions);
+        }
+
+        private void append(T element) {
+            if (count == ring.length) {
+                Object[] grown = new Object[ring.length * 2];
+                for (int i = 0; i < count; i++) {
+                    grown[i] = ring[(head + i) % ring.length];
+                }
+                ring = grown;
+                head = 0;
+            }
+            ring[(head + count) % ring.length] = element;
+            count++;
+        }
+
+        private void evictOldest() {
+            ring[head] = null;
+            head = (head + 1) % ring.length;
+            count--;
+            base++;
+            evictions++;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ro.lazcatluc.lambda.streams;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Computes, along with the primes, tables of multiplicative functions:
+ * the smallest prime factor, Euler's totient phi, the Moebius function
+ * mu, the number and the sum of divisors.
+ * <p/>
+ * Small ranges can be computed with a linear sieve, in which every
+ * composite is reached exactly once, from its smallest prime factor.
+ * Larger ranges are split in segments that are factored by the primes
+ * up to the square root of the limit, taken from a {@link SegmentedSieve},
+ * several segments in parallel, so that memory stays bounded by the
+ * segment size.
+ *
+ * @author Catalin
+ */
+public final class MultiplicativeSieve {
+
+    /**
+     * The tables of the numbers in [lo, hi).
+     */
+    public static final class Segment {
+
+        private final long lo;
+        private final long[] smallestPrimeFactor;
+        private final long[] phi;
+        private final byte[] mu;
+        private final int[] divisorCount;
+        private final long[] divisorSum;
+
+        private Segment(long lo, int size) {
+            this.lo = lo;
+            smallestPrimeFactor = new long[size];
+            phi = new long[size];
+            mu = new byte[size];
+            divisorCount = new int[size];
+            divisorSum = new long[size];
+        }
+
+        /**
+         * @return the first number of the segment
+         */
+        public long lo() {
+            return lo;
+        }
+
+        /**
+         * @return the number right after the segment
+         */
+        public long hi() {
+            return lo + phi.length;
+        }
+
+        /**
+         * @param n a number in the segment
+         * @return the smallest prime factor of n, 1 for n = 1
+         */
+        public long smallestPrimeFactor(long n) {
+            return smallestPrimeFactor[(int) (n - lo)];
+        }
+
+        /**
+         * @param n a number in the segment
+         * @return whether n is prime
+         */
+        public boolean isPrime(long n) {
+            return n > 1 && smallestPrimeFactor(n) == n;
+        }
+
+        /**
+         * @param n a number in the segment
+         * @return Euler's totient of n
+         */
+        public long phi(long n) {
+            return phi[(int) (n - lo)];
+        }
+
+        /**
+         * @param n a number in the segment
+         * @return the Moebius function of n
+         */
+        public int mu(long n) {
+            return mu[(int) (n - lo)];
+        }
+
+        /**
+         * @param n a number in the segment
+         * @return the number of divisors of n
+         */
+        public int divisorCount(long n) {
+            return divisorCount[(int) (n - lo)];
+        }
+
+        /**
+         * @param n a number in the segment
+         * @return the sum of the divisors of n
+         */
+        public long divisorSum(long n) {
+            return divisorSum[(int) (n - lo)];
+        }
+
+        /**
+         * @return the ordered primes in the segment
+         */
+        public long[] primes() {
+            return IntStream.range(0, phi.length)
+                    .filter(i -> lo + i > 1 && smallestPrimeFactor[i] == lo + i)
+                    .mapToLong(i -> lo + i)
+                    .toArray();
+        }
+
+        private void setOne(int i) {
+            smallestPrimeFactor[i] = 1;
+            phi[i] = 1;
+            mu[i] = 1;
+            divisorCount[i] = 1;
+            divisorSum[i] = 1;
+        }
+    }
+
+    private final long limit;
+    private final long[] basePrimes;
+
+    /**
+     * @param limit the number right after the highest number to sieve
+     */
+    public MultiplicativeSieve(long limit) {
+        this.limit = limit;
+        this.basePrimes = new SegmentedSieve().primes(0, (long) Math.sqrt((double) limit) + 2);
+    }
+
+    /**
+     * Linear sieve of the numbers in [0, n).
+     *
+     * @param n the size of the range
+     * @return the tables of the range
+     */
+    public static Segment linear(int n) {
+        Segment s = new Segment(0, n);
+        byte[] exponent = new byte[n];
+        long[] power = new long[n];
+        int[] primes = new int[Math.max(16, n / 8)];
+        int count = 0;
+        if (n > 1) {
+            s.setOne(1);
+        }
+        for (int i = 2; i < n; i++) {
+            if (s.smallestPrimeFactor[i] == 0) {
+                if (count == primes.length) {
+                    primes = Arrays.copyOf(primes, count * 2);
+                }
+                primes[count++] = i;
+                s.smallestPrimeFactor[i] = i;
+                s.phi[i] = i - 1;
+                s.mu[i] = -1;
+                s.divisorCount[i] = 2;
+                s.divisorSum[i] = i + 1;
+                exponent[i] = 1;
+                power[i] = i;
+            }
+            for (int j = 0; j < count; j++) {
+                int p = primes[j];
+                long m = (long) i * p;
+                if (p > s.smallestPrimeFactor[i] || m >= n) {
+                    break;
+                }
+                int k = (int) m;
+                s.smallestPrimeFactor[k] = p;
+                if (p == s.smallestPrimeFactor[i]) {
+                    /**
+                     * p divides i: the exponent of p grows and the
+                     * part of k coprime to p is the one of i.
+                     */
+                    exponent[k] = (byte) (exponent[i] + 1);
+                    power[k] = power[i] * p;
+                    int rest = (int) (i / power[i]);
+                    s.phi[k] = s.phi[i] * p;
+                    s.mu[k] = 0;
+                    s.divisorCount[k] = s.divisorCount[rest] * (exponent[k] + 1);
+                    s.divisorSum[k] = s.divisorSum[rest] * ((power[k] * p - 1) / (p - 1));
+                    break;
+                }
+                exponent[k] = 1;
+                power[k] = p;
+                s.phi[k] = s.phi[i] * (p - 1);
+                s.mu[k] = (byte) -s.mu[i];
+                s.divisorCount[k] = s.divisorCount[i] * 2;
+                s.divisorSum[k] = s.divisorSum[i] * (p + 1);
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Factors the numbers in [lo, hi) by the base primes.
+     *
+     * @param lo the first number of the segment
+     * @param hi the number right after the segment, at most the limit
+     * @return the tables of the segment
+     */
+    public Segment segment(long lo, long hi) {
+        if (lo < 0 || hi < lo || hi > limit || hi - lo > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid segment [" + lo + ", " + hi + ")");
+        }
+        int size = (int) (hi - lo);
+        Segment s = new Segment(lo, size);
+        long[] rest = new long[size];
+        for (int i = 0; i < size; i++) {
+            rest[i] = lo + i;
+            s.phi[i] = lo + i;
+            s.mu[i] = 1;
+            s.divisorCount[i] = 1;
+            s.divisorSum[i] = 1;
+        }
+        for (long p : basePrimes) {
+            if (p * p >= hi) {
+                break;
+            }
+            for (long m = Math.max(p, (lo + p - 1) / p * p); m < hi; m += p) {
+                int i = (int) (m - lo);
+                int e = 0;
+                long power = 1;
+                while (rest[i] % p == 0) {
+                    rest[i] /= p;
+                    e++;
+                    power *= p;
+                }
+                s.phi[i] = s.phi[i] / p * (p - 1);
+                s.mu[i] = e > 1 ? 0 : (byte) -s.mu[i];
+                s.divisorCount[i] *= e + 1;
+                s.divisorSum[i] *= (power * p - 1) / (p - 1);
+                if (s.smallestPrimeFactor[i] == 0) {
+                    s.smallestPrimeFactor[i] = p;
+                }
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            long n = lo + i;
+            if (n < 2) {
+                if (n == 1) {
+                    s.setOne(i);
+                } else {
+                    s.phi[i] = 0;
+                    s.mu[i] = 0;
+                    s.divisorCount[i] = 0;
+                    s.divisorSum[i] = 0;
+                }
+            } else if (rest[i] > 1) {
+                /**
+                 * What is left is a single prime above the square root.
+                 */
+                long p = rest[i];
+                s.phi[i] = s.phi[i] / p * (p - 1);
+                s.mu[i] = (byte) -s.mu[i];
+                s.divisorCount[i] *= 2;
+                s.divisorSum[i] *= p + 1;
+                if (s.smallestPrimeFactor[i] == 0) {
+                    s.smallestPrimeFactor[i] = p;
+                }
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Computes the segments of [lo, hi), parallelism segments at a
+     * time, and passes them in order to the consumer.
+     *
+     * @param lo the first number of the range
+     * @param hi the number right after the range, at most the limit
+     * @param segmentSize the size of a segment
+     * @param consumer the consumer of the segments
+     */
+    public void forEachSegment(long lo, long hi, int segmentSize, Consumer<Segment> consumer) {
+        final int parallelism = Runtime.getRuntime().availableProcessors();
+        for (long from = lo; from < hi; from += (long) segmentSize * parallelism) {
+            final long batch = from;
+            IntStream.range(0, parallelism)
+                    .mapToLong(k -> batch + (long) k * segmentSize)
+                    .filter(start -> start < hi)
+                    .parallel()
+                    .mapToObj(start -> segment(start, Math.min(hi, start + segmentSize)))
+                    .forEachOrdered(consumer);
+        }
+    }
+}
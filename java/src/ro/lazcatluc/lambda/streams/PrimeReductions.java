@@ -0,0 +1,231 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ro.lazcatluc.lambda.streams;
+
+import java.math.BigInteger;
+import java.util.BitSet;
+import java.util.function.LongBinaryOperator;
+import java.util.stream.LongStream;
+
+/**
+ * Aggregates of the primes in a range, computed directly on the
+ * segment bitsets of a {@link SegmentedSieve}: counting is a popcount
+ * and the other aggregates scan the set bits, without materializing
+ * the primes. The segments are reduced in parallel, unless asked
+ * otherwise, and their results combined in order.
+ *
+ * @author Catalin
+ */
+public final class PrimeReductions {
+
+    /**
+     * Count, sum, bounds and gaps of the primes in a range.
+     */
+    public static final class Summary {
+
+        private static final Summary EMPTY = new Summary(0, 0, 0, 0, 0, Long.MAX_VALUE, 0);
+
+        private final long count;
+        /**
+         * The sum, as an unsigned 128-bit number.
+         */
+        private final long sumLow;
+        private final long sumHigh;
+        private final long first;
+        private final long last;
+        private final long minGap;
+        private final long maxGap;
+
+        private Summary(long count, long sumLow, long sumHigh, long first, long last, long minGap, long maxGap) {
+            this.count = count;
+            this.sumLow = sumLow;
+            this.sumHigh = sumHigh;
+            this.first = first;
+            this.last = last;
+            this.minGap = minGap;
+            this.maxGap = maxGap;
+        }
+
+        /**
+         * @return the number of primes
+         */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * @return the sum of the primes, which may not fit in a long
+         */
+        public BigInteger sum() {
+            return BigInteger.valueOf(sumHigh).shiftLeft(64)
+                    .add(BigInteger.valueOf(sumLow >>> 1).shiftLeft(1))
+                    .add(BigInteger.valueOf(sumLow & 1));
+        }
+
+        /**
+         * @return the lowest prime, or 0 if there are none
+         */
+        public long first() {
+            return first;
+        }
+
+        /**
+         * @return the highest prime, or 0 if there are none
+         */
+        public long last() {
+            return last;
+        }
+
+        /**
+         * @return the smallest gap between consecutive primes,
+         *  or 0 if there are less than two primes
+         */
+        public long minGap() {
+            return count < 2 ? 0 : minGap;
+        }
+
+        /**
+         * @return the largest gap between consecutive primes,
+         *  or 0 if there are less than two primes
+         */
+        public long maxGap() {
+            return maxGap;
+        }
+
+        /**
+         * @param next the summary of the range right after this one
+         * @return the summary of both ranges
+         */
+        Summary combine(Summary next) {
+            if (count == 0) {
+                return next;
+            }
+            if (next.count == 0) {
+                return this;
+            }
+            long low = sumLow + next.sumLow;
+            long high = sumHigh + next.sumHigh + (Long.compareUnsigned(low, sumLow) < 0 ? 1 : 0);
+            long gap = next.first - last;
+            return new Summary(count + next.count, low, high, first, next.last,
+                    Math.min(gap, Math.min(minGap, next.minGap)),
+                    Math.max(gap, Math.max(maxGap, next.maxGap)));
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", sum=" + sum() + ", first=" + first + ", last=" + last
+                    + ", minGap=" + minGap() + ", maxGap=" + maxGap();
+        }
+    }
+
+    private final SegmentedSieve sieve;
+    private final int segmentSize;
+    private final boolean parallel;
+
+    public PrimeReductions() {
+        this(new SegmentedSieve(), 1 << 21);
+    }
+
+    /**
+     * @param sieve the sieve computing the segments
+     * @param segmentSize the size of the segments reduced in parallel
+     */
+    public PrimeReductions(SegmentedSieve sieve, int segmentSize) {
+        this(sieve, segmentSize, true);
+    }
+
+    /**
+     * @param sieve the sieve computing the segments
+     * @param segmentSize the size of the segments
+     * @param parallel whether the segments are reduced in parallel,
+     *  or one after the other in the calling thread
+     */
+    public PrimeReductions(SegmentedSieve sieve, int segmentSize, boolean parallel) {
+        this.sieve = sieve;
+        this.segmentSize = segmentSize;
+        this.parallel = parallel;
+    }
+
+    /**
+     * @param lo the first number of the range
+     * @param hi the number right after the range
+     * @return the number of primes in [lo, hi)
+     */
+    public long count(long lo, long hi) {
+        return segments(lo, hi).map(from -> sieve.sieve(from, end(from, hi)).cardinality()).sum();
+    }
+
+    /**
+     * @param lo the first number of the range
+     * @param hi the number right after the range
+     * @return the count, sum, bounds and gaps of the primes in [lo, hi)
+     */
+    public Summary summarize(long lo, long hi) {
+        return segments(lo, hi)
+                .mapToObj(from -> summarizeSegment(from, end(from, hi)))
+                .reduce(Summary.EMPTY, Summary::combine);
+    }
+
+    /**
+     * Folds the primes of [lo, hi) in order. Each segment is folded
+     * starting from the identity and the results of the segments are
+     * folded in turn, so the operator must be associative and the
+     * identity neutral for it (e.g. sum, xor, max).
+     *
+     * @param lo the first number of the range
+     * @param hi the number right after the range
+     * @param identity the neutral element of the operator
+     * @param op the associative operator
+     * @return the fold of the primes
+     */
+    public long fold(long lo, long hi, long identity, LongBinaryOperator op) {
+        return segments(lo, hi)
+                .map(from -> {
+                    BitSet primes = sieve.sieve(from, end(from, hi));
+                    long acc = identity;
+                    for (int i = primes.nextSetBit(0); i >= 0; i = primes.nextSetBit(i + 1)) {
+                        acc = op.applyAsLong(acc, from + i);
+                    }
+                    return acc;
+                })
+                .reduce(identity, op);
+    }
+
+    private LongStream segments(long lo, long hi) {
+        long segments = (hi - lo + segmentSize - 1) / segmentSize;
+        LongStream froms = LongStream.range(0, Math.max(0, segments)).map(k -> lo + k * segmentSize);
+        return parallel ? froms.parallel() : froms;
+    }
+
+    private long end(long from, long hi) {
+        return Math.min(hi, from + segmentSize);
+    }
+
+    private Summary summarizeSegment(long lo, long hi) {
+        BitSet primes = sieve.sieve(lo, hi);
+        int first = primes.nextSetBit(0);
+        if (first < 0) {
+            return Summary.EMPTY;
+        }
+        long low = 0;
+        long high = 0;
+        long minGap = Long.MAX_VALUE;
+        long maxGap = 0;
+        int previous = first;
+        for (int i = first; i >= 0; i = primes.nextSetBit(i + 1)) {
+            long prime = lo + i;
+            low += prime;
+            if (Long.compareUnsigned(low, prime) < 0) {
+                high++;
+            }
+            if (i > previous) {
+                minGap = Math.min(minGap, i - previous);
+                maxGap = Math.max(maxGap, i - previous);
+            }
+            previous = i;
+        }
+        return new Summary(primes.cardinality(), low, high, lo + first, lo + previous, minGap, maxGap);
+    }
+}
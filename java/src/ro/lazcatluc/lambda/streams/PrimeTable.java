@@ -0,0 +1,244 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ro.lazcatluc.lambda.streams;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.BitSet;
+
+/**
+ * Bitset of the odd primes below a bound: bit i is set iff 2i + 1
+ * is prime.
+ * <p/>
+ * The build generates the table into the {@value #RESOURCE} classpath
+ * resource (see the -post-compile target of build.xml and the
+ * prime.table.bound property), so that small queries are answered
+ * without computing any prime at startup.
+ *
+ * @author Catalin
+ */
+public final class PrimeTable {
+
+    /**
+     * The name of the embedded table, next to this class.
+     */
+    public static final String RESOURCE = "primes.bin";
+
+    /**
+     * The bound used when the embedded table is missing,
+     * e.g. when running from classes compiled by an IDE.
+     */
+    static final long DEFAULT_BOUND = 1 << 20;
+
+    private static final int MAGIC = 0x50524d54;
+
+    private final long bound;
+    private final BitSet odd;
+
+    private PrimeTable(long bound, BitSet odd) {
+        this.bound = bound;
+        this.odd = odd;
+    }
+
+    private static final class Embedded {
+        static final PrimeTable TABLE = load();
+
+        private static PrimeTable load() {
+            InputStream in = PrimeTable.class.getResourceAsStream(RESOURCE);
+            if (in == null) {
+                return generate(DEFAULT_BOUND);
+            }
+            try {
+                return read(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * @return the table embedded at build time, loaded on first use
+     */
+    public static PrimeTable embedded() {
+        return Embedded.TABLE;
+    }
+
+    /**
+     * @param bound the number right after the table, below 2^32
+     * @return the table of the primes below bound
+     */
+    public static PrimeTable generate(long bound) {
+        if (bound < 3 || bound >= 1l << 32) {
+            throw new IllegalArgumentException("Invalid bound " + bound);
+        }
+        BitSet odd = new BitSet((int) (bound / 2));
+        SegmentedSieve sieve = new SegmentedSieve();
+        final int segment = 1 << 24;
+        for (long lo = 0; lo < bound; lo += segment) {
+            BitSet primes = sieve.sieve(lo, Math.min(bound, lo + segment));
+            for (int i = primes.nextSetBit(0); i >= 0; i = primes.nextSetBit(i + 1)) {
+                long prime = lo + i;
+                if (prime != 2) {
+                    odd.set((int) (prime >>> 1));
+                }
+            }
+        }
+        return new PrimeTable(bound, odd);
+    }
+
+    /**
+     * @return the number right after the table
+     */
+    public long bound() {
+        return bound;
+    }
+
+    /**
+     * @param n a number below the bound
+     * @return whether n is prime
+     */
+    public boolean isPrime(long n) {
+        if (n < 0 || n >= bound) {
+            throw new IllegalArgumentException(n + " is outside the table [0, " + bound + ")");
+        }
+        return n == 2 || ((n & 1) == 1 && odd.get((int) (n >>> 1)));
+    }
+
+    /**
+     * @return the number of primes below the bound
+     */
+    public long count() {
+        return odd.cardinality() + 1;
+    }
+
+    /**
+     * @param lo the first number of the range
+     * @param hi the number right after the range, at most the bound
+     * @return the number of primes in [lo, hi)
+     */
+    public long count(long lo, long hi) {
+        checkRange(lo, hi);
+        long count = lo <= 2 && hi > 2 ? 1 : 0;
+        return count + odd.get((int) (lo >>> 1), (int) (hi >>> 1)).cardinality();
+    }
+
+    /**
+     * @param lo the first number of the range
+     * @param hi the number right after the range, at most the bound
+     * @return the ordered primes in [lo, hi)
+     */
+    public long[] primes(long lo, long hi) {
+        checkRange(lo, hi);
+        long[] ret = new long[(int) count(lo, hi)];
+        int n = 0;
+        if (lo <= 2 && hi > 2) {
+            ret[n++] = 2;
+        }
+        int end = (int) (hi >>> 1);
+        for (int i = odd.nextSetBit((int) (lo >>> 1)); i >= 0 && i < end; i = odd.nextSetBit(i + 1)) {
+            ret[n++] = 2l * i + 1;
+        }
+        return ret;
+    }
+
+    private void checkRange(long lo, long hi) {
+        if (lo < 0 || hi < lo || hi > bound) {
+            throw new IllegalArgumentException("[" + lo + ", " + hi + ") is outside the table [0, " + bound + ")");
+        }
+    }
+
+    /**
+     * The stream of prime numbers read from the table and
+     * computed once it goes past the bound.
+     *
+     * @return the stream of prime numbers
+     */
+    public IStream<Long> stream() {
+        return new IStream<Long>() {
+
+            private long root = 2;
+            private IStream<Long> beyond;
+
+            @Override
+            public Long root() {
+                return root;
+            }
+
+            @Override
+            public Long next() {
+                if (beyond == null) {
+                    int i = odd.nextSetBit((int) ((root + 1) >>> 1));
+                    if (i >= 0) {
+                        root = 2l * i + 1;
+                        return root;
+                    }
+                    /**
+                     * The stream starts two numbers after the one it is
+                     * given, so it is seeded with root - 1 not to skip 3
+                     * when the table holds no odd prime.
+                     */
+                    beyond = Eratostene.eratosteneWithoutSaveSingleThread(Eratostene.eratosteneWithSave(), root - 1);
+                }
+                root = beyond.next();
+                return root;
+            }
+        };
+    }
+
+    /**
+     * @param out the stream the table is written to
+     * @throws IOException if the table cannot be written
+     */
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeLong(bound);
+        long[] words = odd.toLongArray();
+        data.writeInt(words.length);
+        for (long word : words) {
+            data.writeLong(word);
+        }
+        data.flush();
+    }
+
+    /**
+     * @param in the stream holding a table written by {@link #write(OutputStream)}
+     * @return the table
+     * @throws IOException if the table cannot be read
+     */
+    public static PrimeTable read(InputStream in) throws IOException {
+        try (DataInputStream data = new DataInputStream(new BufferedInputStream(in))) {
+            if (data.readInt() != MAGIC) {
+                throw new IOException("Not a prime table");
+            }
+            long bound = data.readLong();
+            long[] words = new long[data.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = data.readLong();
+            }
+            return new PrimeTable(bound, BitSet.valueOf(words));
+        }
+    }
+
+    /**
+     * Generates the embedded table; called by the build.
+     *
+     * @param args the bound of the table and the file it is written to
+     * @throws IOException if the table cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        try (OutputStream out = Files.newOutputStream(Paths.get(args[1]))) {
+            generate(Long.parseLong(args[0])).write(out);
+        }
+    }
+}
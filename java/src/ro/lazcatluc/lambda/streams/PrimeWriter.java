@@ -0,0 +1,222 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ro.lazcatluc.lambda.streams;
+
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.function.LongConsumer;
+
+/**
+ * Writes large amounts of numbers to a channel without allocating
+ * per number: the numbers are encoded in a reusable direct buffer
+ * which is written to the channel whenever it fills up.
+ *
+ * @author Catalin
+ */
+public final class PrimeWriter implements LongConsumer, Closeable {
+
+    /**
+     * The encoding of the written numbers.
+     */
+    public enum Format {
+        /**
+         * Decimal ASCII, one number per line.
+         */
+        TEXT,
+        /**
+         * 8 bytes per number, big-endian.
+         */
+        BINARY,
+        /**
+         * The difference to the previous number as a varint (7 bits
+         * per byte, the high bit marking that more bytes follow);
+         * the numbers must be increasing.
+         */
+        GAPS
+    }
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * "00", "01", ..., "99", so that decimals are written
+     * two digits at a time.
+     */
+    private static final byte[] DIGIT_PAIRS = new byte[200];
+
+    static {
+        for (int i = 0; i < 100; i++) {
+            DIGIT_PAIRS[2 * i] = (byte) ('0' + i / 10);
+            DIGIT_PAIRS[2 * i + 1] = (byte) ('0' + i % 10);
+        }
+    }
+
+    private final WritableByteChannel channel;
+    private final boolean closeChannel;
+    private final Format format;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final byte[] digits = new byte[20];
+    private long previous = 0;
+
+    public PrimeWriter(WritableByteChannel channel, Format format) {
+        this(channel, true, format);
+    }
+
+    private PrimeWriter(WritableByteChannel channel, boolean closeChannel, Format format) {
+        this.channel = channel;
+        this.closeChannel = closeChannel;
+        this.format = format;
+    }
+
+    /**
+     * Closing the returned writer only flushes it and leaves the
+     * standard output open, so that System.out can still be used.
+     *
+     * @param format the encoding of the written numbers
+     * @return a writer to the standard output
+     */
+    public static PrimeWriter stdout(Format format) {
+        return new PrimeWriter(new FileOutputStream(FileDescriptor.out).getChannel(), false, format);
+    }
+
+    /**
+     * @param file the file to write, replaced if it exists
+     * @param format the encoding of the written numbers
+     * @return a writer to the file
+     * @throws IOException if the file cannot be opened
+     */
+    public static PrimeWriter toFile(Path file, Format format) throws IOException {
+        return new PrimeWriter(FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), format);
+    }
+
+    /**
+     * @param value the non-negative number to write
+     * @throws IOException if the buffer cannot be flushed
+     */
+    public void write(long value) throws IOException {
+        if (value < 0) {
+            throw new IllegalArgumentException("Cannot write " + value);
+        }
+        if (buffer.remaining() < 21) {
+            drain();
+        }
+        switch (format) {
+            case TEXT:
+                writeDecimal(value);
+                buffer.put((byte) '\n');
+                break;
+            case BINARY:
+                buffer.putLong(value);
+                break;
+            case GAPS:
+                if (value < previous) {
+                    throw new IllegalArgumentException(value + " cannot follow " + previous);
+                }
+                long gap = value - previous;
+                while (gap >= 0x80) {
+                    buffer.put((byte) (gap | 0x80));
+                    gap >>>= 7;
+                }
+                buffer.put((byte) gap);
+                break;
+        }
+        previous = value;
+    }
+
+    /**
+     * Same as {@link #write(long)}, for use as a consumer of primes.
+     */
+    @Override
+    public void accept(long value) {
+        try {
+            write(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeDecimal(long value) {
+        int start = digits.length;
+        while (value >= 100) {
+            int pair = (int) (value % 100) << 1;
+            value /= 100;
+            digits[--start] = DIGIT_PAIRS[pair + 1];
+            digits[--start] = DIGIT_PAIRS[pair];
+        }
+        if (value >= 10) {
+            int pair = (int) value << 1;
+            digits[--start] = DIGIT_PAIRS[pair + 1];
+            digits[--start] = DIGIT_PAIRS[pair];
+        } else {
+            digits[--start] = (byte) ('0' + value);
+        }
+        buffer.put(digits, start, digits.length - start);
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes the buffered numbers to the channel.
+     *
+     * @throws IOException if the channel cannot be written
+     */
+    public void flush() throws IOException {
+        drain();
+    }
+
+    /**
+     * Flushes the buffer and closes the channel, unless
+     * the writer was created by {@link #stdout(Format)}.
+     *
+     * @throws IOException if the channel cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            if (closeChannel) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Prints the first N primes, like haskell/primes.hs does.
+     *
+     * @param args the number of primes and optionally the format
+     *  (TEXT, BINARY or GAPS)
+     * @throws IOException if the standard output cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        long n = Long.parseLong(args[0]);
+        Format format = args.length > 1 ? Format.valueOf(args[1].toUpperCase()) : Format.TEXT;
+        SegmentedSieve sieve = new SegmentedSieve();
+        final int segment = 1 << 22;
+        try (PrimeWriter out = stdout(format)) {
+            for (long lo = 0; n > 0; lo += segment) {
+                BitSet primes = sieve.sieve(lo, lo + segment);
+                for (int i = primes.nextSetBit(0); i >= 0 && n > 0; i = primes.nextSetBit(i + 1), n--) {
+                    out.write(lo + i);
+                }
+            }
+        }
+    }
+}
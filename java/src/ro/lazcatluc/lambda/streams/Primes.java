@@ -0,0 +1,298 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ro.lazcatluc.lambda.streams;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.LongStream;
+
+/**
+ * Single entry point for prime queries: the first n primes, the primes
+ * or their count in a range, and primality tests. For every query a
+ * planner picks the cheapest backend from the size of the query and the
+ * available cores; the plan can be inspected through the plan* methods.
+ *
+ * @author Catalin
+ */
+public final class Primes {
+
+    /**
+     * The ways a query can be answered.
+     */
+    public enum Backend {
+        /**
+         * Lookups in the prime table embedded at build time.
+         */
+        TABLE,
+        /**
+         * A single segment of the segmented sieve.
+         */
+        SEGMENTED_SIEVE,
+        /**
+         * Segments of the segmented sieve computed in parallel.
+         */
+        PARALLEL_SEGMENTED_SIEVE,
+        /**
+         * Deterministic Miller-Rabin test, exact for all longs.
+         */
+        MILLER_RABIN
+    }
+
+    /**
+     * The backend chosen for a query, with its parallelism.
+     */
+    public static final class Plan {
+
+        private final Backend backend;
+        private final long hi;
+        private final long segments;
+        private final int parallelism;
+
+        private Plan(Backend backend, long hi, long segments, int parallelism) {
+            this.backend = backend;
+            this.hi = hi;
+            this.segments = segments;
+            this.parallelism = parallelism;
+        }
+
+        public Backend getBackend() {
+            return backend;
+        }
+
+        /**
+         * @return the number of sieve segments, 0 if not sieving
+         */
+        public long getSegments() {
+            return segments;
+        }
+
+        /**
+         * @return the number of threads the query runs on
+         */
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        @Override
+        public String toString() {
+            switch (backend) {
+                case TABLE:
+                case MILLER_RABIN:
+                    return backend.toString();
+                default:
+                    return backend + " up to " + hi + " in " + segments + " segments on " + parallelism + " threads";
+            }
+        }
+    }
+
+    private static final long[] WITNESSES = {2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37};
+    private static final long MUL_LIMIT = 3037000499l;
+
+    private final PrimeTable table;
+    private final SegmentedSieve sieve;
+    private final int segmentSize;
+    private final int cores;
+
+    public Primes() {
+        this(PrimeTable.embedded(), new SegmentedSieve(), 1 << 21, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param table the table answering the small queries
+     * @param sieve the sieve answering the larger ones
+     * @param segmentSize the size of a sieve segment
+     * @param cores the maximum number of threads of a query
+     */
+    public Primes(PrimeTable table, SegmentedSieve sieve, int segmentSize, int cores) {
+        if (segmentSize < 1 || cores < 1) {
+            throw new IllegalArgumentException("Invalid segment size " + segmentSize + " or number of cores " + cores);
+        }
+        this.table = table;
+        this.sieve = sieve;
+        this.segmentSize = segmentSize;
+        this.cores = cores;
+    }
+
+    /**
+     * @param n the number to test
+     * @return the plan of {@link #isPrime(long)}
+     */
+    public Plan planIsPrime(long n) {
+        return new Plan(n < table.bound() ? Backend.TABLE : Backend.MILLER_RABIN, n + 1, 0, 1);
+    }
+
+    /**
+     * @param lo the first number of the range
+     * @param hi the number right after the range
+     * @return the plan of {@link #range(long, long)} and {@link #count(long, long)}
+     */
+    public Plan planRange(long lo, long hi) {
+        if (hi <= table.bound()) {
+            return new Plan(Backend.TABLE, hi, 0, 1);
+        }
+        long segments = Math.max(0, (hi - lo + segmentSize - 1) / segmentSize);
+        if (segments <= 1 || cores == 1) {
+            return new Plan(Backend.SEGMENTED_SIEVE, hi, segments, 1);
+        }
+        return new Plan(Backend.PARALLEL_SEGMENTED_SIEVE, hi, segments, (int) Math.min(cores, segments));
+    }
+
+    /**
+     * @param n the number of primes
+     * @return the plan of {@link #first(int)}
+     */
+    public Plan planFirst(int n) {
+        return planRange(0, upperBound(n));
+    }
+
+    /**
+     * @param n the number to test
+     * @return whether n is prime
+     */
+    public boolean isPrime(long n) {
+        if (planIsPrime(n).getBackend() == Backend.TABLE) {
+            return n >= 0 && table.isPrime(n);
+        }
+        return millerRabin(n);
+    }
+
+    /**
+     * @param lo the first number of the range
+     * @param hi the number right after the range
+     * @return the number of primes in [lo, hi)
+     */
+    public long count(long lo, long hi) {
+        if (hi <= lo) {
+            return 0;
+        }
+        Plan plan = planRange(lo, hi);
+        if (plan.getBackend() == Backend.TABLE) {
+            return table.count(lo, hi);
+        }
+        boolean parallel = plan.getBackend() == Backend.PARALLEL_SEGMENTED_SIEVE;
+        return run(plan, () -> new PrimeReductions(sieve, segmentSize, parallel).count(lo, hi));
+    }
+
+    /**
+     * @param lo the first number of the range
+     * @param hi the number right after the range
+     * @return the ordered primes in [lo, hi)
+     */
+    public long[] range(long lo, long hi) {
+        if (hi <= lo) {
+            return new long[0];
+        }
+        Plan plan = planRange(lo, hi);
+        if (plan.getBackend() == Backend.TABLE) {
+            return table.primes(lo, hi);
+        }
+        LongStream segments = LongStream.range(0, plan.getSegments());
+        boolean parallel = plan.getBackend() == Backend.PARALLEL_SEGMENTED_SIEVE;
+        return run(plan, () -> (parallel ? segments.parallel() : segments)
+                .mapToObj(k -> sieve.primes(lo + k * segmentSize, Math.min(hi, lo + (k + 1) * segmentSize)))
+                .flatMapToLong(Arrays::stream)
+                .toArray());
+    }
+
+    /**
+     * @param n the number of primes
+     * @return the first n primes
+     */
+    public long[] first(int n) {
+        return Arrays.copyOf(range(0, upperBound(n)), n);
+    }
+
+    /**
+     * @return the stream of prime numbers, read from the table
+     *  for as long as possible
+     */
+    public IStream<Long> stream() {
+        return table.stream();
+    }
+
+    /**
+     * Upper bound of the nth prime (Rosser's theorem).
+     */
+    static long upperBound(int n) {
+        if (n < 6) {
+            return 14;
+        }
+        double log = Math.log(n);
+        return (long) (n * (log + Math.log(log))) + 1;
+    }
+
+    /**
+     * Runs the query in the calling thread, or in a pool
+     * of the parallelism of the plan if it is parallel.
+     */
+    private <T> T run(Plan plan, Supplier<T> query) {
+        if (plan.getBackend() != Backend.PARALLEL_SEGMENTED_SIEVE) {
+            return query.get();
+        }
+        ForkJoinPool pool = new ForkJoinPool(plan.getParallelism());
+        try {
+            return pool.submit(query::get).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static boolean millerRabin(long n) {
+        if (n < 2) {
+            return false;
+        }
+        for (long p : WITNESSES) {
+            if (n % p == 0) {
+                return n == p;
+            }
+        }
+        long d = n - 1;
+        int r = Long.numberOfTrailingZeros(d);
+        d >>= r;
+        witnesses:
+        for (long a : WITNESSES) {
+            long x = powMod(a, d, n);
+            if (x == 1 || x == n - 1) {
+                continue;
+            }
+            for (int i = 1; i < r; i++) {
+                x = mulMod(x, x, n);
+                if (x == n - 1) {
+                    continue witnesses;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private static long powMod(long base, long exponent, long m) {
+        long ret = 1;
+        base %= m;
+        while (exponent > 0) {
+            if ((exponent & 1) == 1) {
+                ret = mulMod(ret, base, m);
+            }
+            base = mulMod(base, base, m);
+            exponent >>= 1;
+        }
+        return ret;
+    }
+
+    private static long mulMod(long a, long b, long m) {
+        if (a < MUL_LIMIT && b < MUL_LIMIT) {
+            return a * b % m;
+        }
+        return BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)).mod(BigInteger.valueOf(m)).longValue();
+    }
+}
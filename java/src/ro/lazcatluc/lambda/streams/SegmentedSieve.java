@@ -0,0 +1,73 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ro.lazcatluc.lambda.streams;
+
+import java.util.BitSet;
+
+/**
+ * Sieve of Eratosthenes over an arbitrary range [lo, hi),
+ * crossing out the multiples of the saved primes up to
+ * the square root of hi.
+ *
+ * @author Catalin
+ */
+public final class SegmentedSieve {
+
+    private final LazyListStream<Long> savedPrimes;
+
+    public SegmentedSieve() {
+        this(Eratostene.eratosteneWithSave());
+    }
+
+    /**
+     * @param savedPrimes the stream of primes used for crossing out,
+     *  extended on demand when a range needs larger primes
+     */
+    public SegmentedSieve(LazyListStream<Long> savedPrimes) {
+        this.savedPrimes = savedPrimes;
+    }
+
+    /**
+     * Sieves one segment.
+     *
+     * @param lo the first number of the segment
+     * @param hi the number right after the segment
+     * @return the set in which bit i is set iff lo + i is prime
+     */
+    public BitSet sieve(long lo, long hi) {
+        if (lo < 0 || hi < lo || hi - lo > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid segment [" + lo + ", " + hi + ")");
+        }
+        int size = (int) (hi - lo);
+        BitSet bits = new BitSet(size);
+        bits.set(0, size);
+        if (lo < 2) {
+            bits.clear(0, (int) Math.min(2 - lo, size));
+        }
+        LazyListStream<Long> primes = savedPrimes.newInstance();
+        for (long prime = primes.next(); prime * prime < hi; prime = primes.next()) {
+            long multiple = Math.max(prime * prime, (lo + prime - 1) / prime * prime);
+            for (; multiple < hi; multiple += prime) {
+                bits.clear((int) (multiple - lo));
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * @param lo the first number of the segment
+     * @param hi the number right after the segment
+     * @return the ordered primes in [lo, hi)
+     */
+    public long[] primes(long lo, long hi) {
+        BitSet bits = sieve(lo, hi);
+        long[] ret = new long[bits.cardinality()];
+        int n = 0;
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            ret[n++] = lo + i;
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ro.lazcatluc.lambda.streams;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Splits a range [lo, hi) into shards and sieves each of them
+ * in a separate local JVM running {@link ShardWorker}, so that
+ * one job can use all the cores across several processes.
+ * <p/>
+ * A shard whose worker dies or leaves no valid shard file is
+ * retried in a new process. The primes of the shards are merged
+ * in order, each shard as soon as it and all the previous ones
+ * are done. The shard files are deleted once merged, and when
+ * the run fails.
+ *
+ * @author Catalin
+ */
+public final class ShardCoordinator {
+
+    private final int workers;
+    private final int attempts;
+    private final Path workDir;
+
+    /**
+     * @param workers the number of worker processes running at the same time
+     * @param attempts the number of times a shard is tried before giving up
+     * @param workDir the directory holding the shard files
+     */
+    public ShardCoordinator(int workers, int attempts, Path workDir) {
+        this.workers = workers;
+        this.attempts = attempts;
+        this.workDir = workDir;
+    }
+
+    /**
+     * Sieves the range, passing its primes in order to the consumer.
+     *
+     * @param lo the first number of the range
+     * @param hi the number right after the range
+     * @param shardSize the size of the range sieved by one worker
+     * @param primes the consumer of the primes in the range
+     * @return the number of primes in the range
+     * @throws IOException if a shard fails on every attempt
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public long run(long lo, long hi, long shardSize, LongConsumer primes) throws IOException, InterruptedException {
+        return sieve(lo, hi, shardSize, primes);
+    }
+
+    /**
+     * Counts the primes in the range; the workers write only
+     * the count of their shard instead of its primes.
+     *
+     * @param lo the first number of the range
+     * @param hi the number right after the range
+     * @param shardSize the size of the range sieved by one worker
+     * @return the number of primes in the range
+     * @throws IOException if a shard fails on every attempt
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public long count(long lo, long hi, long shardSize) throws IOException, InterruptedException {
+        return sieve(lo, hi, shardSize, null);
+    }
+
+    private long sieve(long lo, long hi, long shardSize, LongConsumer primes) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        List<long[]> shards = new ArrayList<>();
+        try {
+            List<Future<Path>> files = new ArrayList<>();
+            for (long from = lo; from < hi; from += shardSize) {
+                final long[] shard = {from, Math.min(hi, from + shardSize)};
+                shards.add(shard);
+                files.add(executor.submit(() -> sieveShard(shard[0], shard[1], primes == null)));
+            }
+            long count = 0;
+            for (int i = 0; i < shards.size(); i++) {
+                Path file = files.get(i).get();
+                count += ShardWorker.read(file, shards.get(i)[0], shards.get(i)[1], primes);
+                Files.delete(file);
+            }
+            return count;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            /**
+             * The workers still running are killed, then the shards
+             * which were done but not merged are deleted.
+             */
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } finally {
+                for (long[] shard : shards) {
+                    Files.deleteIfExists(shardFile(shard[0], shard[1]));
+                }
+            }
+        }
+    }
+
+    private Path shardFile(long lo, long hi) {
+        return workDir.resolve("shard-" + lo + "-" + hi);
+    }
+
+    private Path sieveShard(long lo, long hi, boolean countOnly) throws IOException, InterruptedException {
+        Path file = shardFile(lo, hi);
+        boolean done = false;
+        try {
+            for (int attempt = 1; attempt <= attempts; attempt++) {
+                List<String> command = new ArrayList<>(Arrays.asList(
+                        Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                        "-cp", System.getProperty("java.class.path"),
+                        ShardWorker.class.getName(),
+                        Long.toString(lo), Long.toString(hi), file.toString()));
+                if (countOnly) {
+                    command.add("count");
+                }
+                Process worker = new ProcessBuilder(command).inheritIO().start();
+                try {
+                    if (worker.waitFor() == 0) {
+                        ShardWorker.read(file, lo, hi, null);
+                        done = true;
+                        return file;
+                    }
+                } catch (IOException e) {
+                    // The shard file is missing or invalid; try again.
+                } finally {
+                    kill(worker);
+                    Files.deleteIfExists(ShardWorker.tmpFile(file));
+                }
+            }
+            throw new IOException("Shard [" + lo + ", " + hi + ") failed " + attempts + " times");
+        } finally {
+            if (!done) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Kills the worker and waits until it is gone, so that it
+     * no longer writes to its files.
+     */
+    private static void kill(Process worker) {
+        worker.destroyForcibly();
+        boolean interrupted = false;
+        while (worker.isAlive()) {
+            try {
+                worker.waitFor();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Prints the number of primes in a range.
+     *
+     * @param args the first number of the range, the number right
+     *  after the range and optionally the number of workers
+     * @throws IOException if a shard fails on every attempt
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        long lo = Long.parseLong(args[0]);
+        long hi = Long.parseLong(args[1]);
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        long shardSize = Math.max(1, (hi - lo + 4 * workers - 1) / (4 * workers));
+        Path workDir = Files.createTempDirectory("shards");
+        long count;
+        try {
+            count = new ShardCoordinator(workers, 3, workDir).count(lo, hi, shardSize);
+        } finally {
+            Files.delete(workDir);
+        }
+        System.out.println("There are " + count + " primes in [" + lo + ", " + hi + ")");
+    }
+}
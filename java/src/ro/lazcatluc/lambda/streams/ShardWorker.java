@@ -0,0 +1,138 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ro.lazcatluc.lambda.streams;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.function.LongConsumer;
+
+/**
+ * Worker process of the {@link ShardCoordinator}: sieves one
+ * shard [lo, hi) and writes its primes, or only their count,
+ * to a shard file.
+ * <p/>
+ * The shard file holds the shard bounds, whether it holds only the
+ * count, blocks of primes each preceded by its length, an empty block
+ * and the total count. Segments without primes write no block.
+ * It is written next to its final name and moved in place
+ * once complete, so a killed worker never leaves a partial shard.
+ *
+ * @author Catalin
+ */
+public final class ShardWorker {
+
+    private static final int MAGIC = 0x50524d53;
+    private static final int SEGMENT = 1 << 22;
+
+    private ShardWorker() {
+    }
+
+    /**
+     * Sieves the shard segment by segment and writes the shard file.
+     *
+     * @param lo the first number of the shard
+     * @param hi the number right after the shard
+     * @param file the shard file
+     * @param countOnly whether to write only the number of primes
+     * @throws IOException if the shard file cannot be written
+     */
+    public static void sieve(long lo, long hi, Path file, boolean countOnly) throws IOException {
+        SegmentedSieve sieve = new SegmentedSieve();
+        Path tmp = tmpFile(file);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(lo);
+            out.writeLong(hi);
+            out.writeBoolean(countOnly);
+            long count = 0;
+            for (long from = lo; from < hi; from += SEGMENT) {
+                long to = Math.min(hi, from + SEGMENT);
+                if (countOnly) {
+                    count += sieve.sieve(from, to).cardinality();
+                    continue;
+                }
+                long[] primes = sieve.primes(from, to);
+                if (primes.length == 0) {
+                    // An empty block marks the end of the primes.
+                    continue;
+                }
+                out.writeInt(primes.length);
+                for (long prime : primes) {
+                    out.writeLong(prime);
+                }
+                count += primes.length;
+            }
+            out.writeInt(0);
+            out.writeLong(count);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param file the shard file
+     * @return the file the shard is written to before being moved in place
+     */
+    static Path tmpFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    /**
+     * Reads a shard file, passing its primes in order to the consumer.
+     *
+     * @param file the shard file
+     * @param lo the expected first number of the shard
+     * @param hi the expected number right after the shard
+     * @param primes the consumer of the primes in the shard,
+     *  or null if only their number is needed
+     * @return the number of primes in the shard
+     * @throws IOException if the file is missing or does not hold the shard
+     */
+    public static long read(Path file, long lo, long hi, LongConsumer primes) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readLong() != lo || in.readLong() != hi) {
+                throw new IOException(file + " does not hold the shard [" + lo + ", " + hi + ")");
+            }
+            boolean countOnly = in.readBoolean();
+            if (countOnly && primes != null) {
+                throw new IOException(file + " holds only the number of primes");
+            }
+            long count = 0;
+            for (int n = in.readInt(); n > 0; n = in.readInt()) {
+                for (int i = 0; i < n; i++) {
+                    long prime = in.readLong();
+                    if (primes != null) {
+                        primes.accept(prime);
+                    }
+                }
+                count += n;
+            }
+            if (countOnly) {
+                return in.readLong();
+            }
+            if (in.readLong() != count) {
+                throw new IOException(file + " is corrupted");
+            }
+            return count;
+        }
+    }
+
+    /**
+     * @param args the first number of the shard, the number right
+     *  after the shard, the shard file and optionally "count" to
+     *  write only the number of primes
+     * @throws IOException if the shard file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        sieve(Long.parseLong(args[0]), Long.parseLong(args[1]), Paths.get(args[2]),
+                args.length > 3 && "count".equals(args[3]));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ro.lazcatluc.lambda.streams;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Catalin
+ */
+public class CompressedPrimeListTest {
+
+    private List<Long> primes;
+    private CompressedPrimeList list;
+
+    @Before
+    public void setUp() {
+        primes = Eratostene.eratosteneWithSave().take(10000);
+        list = new CompressedPrimeList();
+        for (Long prime : primes) {
+            list.add(prime);
+        }
+    }
+
+    /**
+     * Test of iterator method, of class CompressedPrimeList.
+     */
+    @Test
+    public void iteratesInOrder() {
+        List<Long> result = new ArrayList<>();
+
+        list.iterator().forEachRemaining((long prime) -> result.add(prime));
+
+        assertEquals(primes, result);
+    }
+
+    /**
+     * Test of get method, of class CompressedPrimeList.
+     */
+    @Test
+    public void randomAccess() {
+        for (int i : new int[]{0, 1, 2, 63, 64, 65, 5000, 9999}) {
+            assertEquals((long) primes.get(i), list.get(i));
+        }
+    }
+
+    /**
+     * 3 is the only prime which can follow 2.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void oddGapAfterTwo() {
+        CompressedPrimeList result = new CompressedPrimeList();
+        result.add(2);
+
+        result.add(5);
+    }
+
+    /**
+     * Test of isPrime method, of class CompressedPrimeList.
+     */
+    @Test
+    public void trialDivision() {
+        assertTrue(list.isPrime(104729));
+        assertFalse(list.isPrime(104729l * 104723));
+        assertTrue(list.isPrime(2));
+    }
+
+    /**
+     * Gaps which do not fit in one byte span several bytes.
+     */
+    @Test
+    public void largeGapsTakeSeveralBytes() {
+        CompressedPrimeList sparse = new CompressedPrimeList();
+        sparse.add(3);
+        sparse.add(1000003);
+        sparse.add(1000033);
+
+        assertEquals(1000003l, sparse.get(1));
+        assertEquals(1000033l, sparse.get(2));
+    }
+
+    /**
+     * Test of eratosteneCompressed method, of class Eratostene.
+     */
+    @Test
+    public void eratosteneCompressed() {
+        CompressedPrimeList saved = new CompressedPrimeList();
+
+        List<Long> result = Eratostene.eratosteneCompressed(saved).take(10000);
+
+        assertEquals(primes, result);
+        assertEquals(primes.subList(0, 5000), Eratostene.eratosteneCompressed(saved).take(5000));
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ro.lazcatluc.lambda.streams;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Catalin
+ */
+public class EratosteneCheckpointTest {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("eratostene", ".checkpoint");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(EratosteneCheckpoint.primesFile(file));
+    }
+
+    /**
+     * Test of save and load methods, of class EratosteneCheckpoint.
+     */
+    @Test
+    public void roundTrip() throws IOException {
+        List<Long> primes = Eratostene.eratosteneWithSave().take(1000);
+        new EratosteneCheckpoint(7, 7919l, primes).save(file);
+
+        EratosteneCheckpoint result = EratosteneCheckpoint.load(file);
+
+        assertEquals(7, result.getStep());
+        assertEquals(7919l, result.getRoot());
+        assertEquals(primes, result.getSavedPrimes());
+    }
+
+    /**
+     * The saved primes are only rewritten when they have changed.
+     */
+    @Test
+    public void unchangedPrimesAreNotRewritten() throws IOException {
+        List<Long> primes = Eratostene.eratosteneWithSave().take(1000);
+        Path primesFile = EratosteneCheckpoint.primesFile(file);
+        FileTime epoch = FileTime.fromMillis(0);
+        new EratosteneCheckpoint(1, 7919l, primes).save(file);
+        Files.setLastModifiedTime(primesFile, epoch);
+
+        new EratosteneCheckpoint(2, 7927l, primes).save(file);
+
+        assertEquals(epoch, Files.getLastModifiedTime(primesFile));
+        assertEquals(2, EratosteneCheckpoint.load(file).getStep());
+
+        new EratosteneCheckpoint(3, 7933l, Eratostene.eratosteneWithSave().take(1001)).save(file);
+
+        assertFalse(epoch.equals(Files.getLastModifiedTime(primesFile)));
+        assertEquals(1001, EratosteneCheckpoint.load(file).getSavedPrimes().size());
+    }
+
+    /**
+     * A crash after the saved primes are moved in place, but before
+     * the checkpoint file is, keeps the previous checkpoint loadable.
+     */
+    @Test
+    public void crashBetweenTheMoves() throws IOException {
+        List<Long> primes = Eratostene.eratosteneWithSave().take(1001);
+        new EratosteneCheckpoint(1, 7919l, primes.subList(0, 1000)).save(file);
+        byte[] previous = Files.readAllBytes(file);
+        new EratosteneCheckpoint(2, 7927l, primes).save(file);
+        Files.write(file, previous);
+
+        EratosteneCheckpoint result = EratosteneCheckpoint.load(file);
+
+        assertEquals(1, result.getStep());
+        assertEquals(primes.subList(0, 1000), result.getSavedPrimes());
+    }
+
+    /**
+     * Resuming the saved primes from a checkpoint continues the
+     * uninterrupted stream.
+     */
+    @Test
+    public void resumeWithSave() throws IOException {
+        List<Long> expResult = Eratostene.eratosteneWithSave().take(2000);
+        LazyListStream<Long> interrupted = Eratostene.eratosteneWithSave();
+        interrupted.take(1000);
+        new EratosteneCheckpoint(1, interrupted.root(), interrupted.contents()).save(file);
+
+        LazyListStream<Long> resumed = Eratostene.eratosteneWithSave(EratosteneCheckpoint.load(file).getSavedPrimes());
+
+        assertEquals(expResult, resumed.take(2000));
+    }
+
+    /**
+     * Resuming from a checkpointed root continues the
+     * uninterrupted stream without saving.
+     */
+    @Test
+    public void resumeWithoutSave() throws IOException {
+        LazyListStream<Long> savedPrimes = Eratostene.eratosteneWithSave();
+        savedPrimes.take(100);
+        IStream<Long> uninterrupted = Eratostene.eratosteneWithoutSaveSingleThread(savedPrimes, 1000l).every(10);
+        uninterrupted.skip(5);
+        new EratosteneCheckpoint(5, uninterrupted.root(), savedPrimes.contents()).save(file);
+        List<Long> expResult = uninterrupted.take(20);
+
+        EratosteneCheckpoint checkpoint = EratosteneCheckpoint.load(file);
+        LazyListStream<Long> restored = Eratostene.eratosteneWithSave(checkpoint.getSavedPrimes());
+        IStream<Long> resumed = Eratostene.eratosteneWithoutSaveSingleThread(restored, checkpoint.getRoot() - 1).every(10);
+
+        assertEquals(expResult, resumed.take(20));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ro.lazcatluc.lambda.streams;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Catalin
+ */
+public class LazyListStreamTest {
+
+    /**
+     * Test of newInstance method, of class LazyListStream.
+     */
+    @Test
+    public void instancesShareTheList() {
+        AtomicInteger computed = new AtomicInteger();
+        LazyListStream<Integer> stream = new LazyListStream<>(list -> list.add(computed.incrementAndGet()));
+        stream.take(5);
+
+        List<Integer> result = stream.newInstance().take(3);
+
+        assertEquals(Arrays.asList(1, 2, 3), result);
+        assertEquals(5, computed.get());
+    }
+
+    /**
+     * Test of iterator method, of class LazyListStream.
+     */
+    @Test
+    public void iteratorReadsPastTheEnd() {
+        List<Long> result = new ArrayList<>();
+
+        for (Long prime : Eratostene.eratosteneWithSave()) {
+            if (prime > 30) {
+                break;
+            }
+            result.add(prime);
+        }
+
+        assertEquals(Arrays.asList(2l, 3l, 5l, 7l, 11l, 13l, 17l, 19l, 23l, 29l), result);
+    }
+
+    /**
+     * Only the extending thread may append to the list.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void appendingOutsideTheExtension() {
+        List<List<Integer>> leaked = new ArrayList<>();
+        LazyListStream<Integer> stream = new LazyListStream<>(list -> {
+            leaked.add(list);
+            list.add(1);
+        });
+        stream.root();
+
+        leaked.get(0).add(2);
+    }
+
+    /**
+     * Concurrent readers extend the shared list exactly once.
+     */
+    @Test
+    public void concurrentReaders() throws Exception {
+        List<Long> expResult = Eratostene.eratosteneWithSave().take(20000);
+        LazyListStream<Long> shared = Eratostene.eratosteneWithSave();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<Long>>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                LazyListStream<Long> cursor = shared.newInstance();
+                results.add(executor.submit(() -> cursor.take(20000)));
+            }
+            for (Future<List<Long>> result : results) {
+                assertEquals(expResult, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(expResult, shared.contents().subList(0, 20000));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ro.lazcatluc.lambda.streams;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Catalin
+ */
+public class MemoizedStreamTest {
+
+    private AtomicInteger computed;
+    private IStream<Long> str;
+
+    @Before
+    public void before() {
+        computed = new AtomicInteger();
+        str = Eratostene.nat().map(i -> {
+            computed.incrementAndGet();
+            return i;
+        });
+    }
+
+    /**
+     * Test of memoize method, of interface IStream.
+     */
+    @Test
+    public void cursorsShareTheCache() {
+        MemoizedStream<Long> first = str.memoize(MemoizedStream.Policy.unbounded());
+        MemoizedStream<Long> second = first.newInstance();
+
+        List<Long> expResult = Arrays.asList(1l, 2l, 3l, 4l, 5l);
+        assertEquals(expResult, first.take(5));
+        computed.set(0);
+        assertEquals(expResult, second.take(5));
+
+        assertEquals(0, computed.get());
+        assertEquals(5, first.statistics().getHits());
+        assertEquals(6, first.statistics().getMisses());
+        assertEquals(0, first.statistics().getEvictions());
+    }
+
+    /**
+     * The window policy keeps only the last elements.
+     */
+    @Test
+    public void windowEvictsOldElements() {
+        MemoizedStream<Long> first = str.memoize(MemoizedStream.Policy.window(3));
+        first.skip(9);
+
+        MemoizedStream<Long> second = first.newInstance();
+
+        assertEquals(Arrays.asList(8l, 9l, 10l, 11l), second.take(4));
+        assertEquals(9, first.statistics().getEvictions());
+    }
+
+    /**
+     * Reading an evicted element fails.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void evictedElement() {
+        MemoizedStream<Long> first = str.memoize(MemoizedStream.Policy.window(2));
+        MemoizedStream<Long> second = first.newInstance();
+        first.skip(5);
+
+        second.root();
+    }
+
+    /**
+     * The slowest cursor policy keeps what the slowest cursor
+     * has not read yet.
+     */
+    @Test
+    public void slowestCursorKeepsUnreadElements() {
+        MemoizedStream<Long> first = str.memoize(MemoizedStream.Policy.slowestCursor());
+        MemoizedStream<Long> second = first.newInstance();
+        first.skip(10);
+        second.skip(4);
+
+        assertEquals(4, first.statistics().getEvictions());
+        assertEquals(Arrays.asList(5l, 6l, 7l), second.take(3));
+        assertEquals(11, first.statistics().getMisses());
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ro.lazcatluc.lambda.streams;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Catalin
+ */
+public class MultiplicativeSieveTest {
+
+    /**
+     * Test of linear method, of class MultiplicativeSieve.
+     */
+    @Test
+    public void knownValues() {
+        MultiplicativeSieve.Segment s = MultiplicativeSieve.linear(100);
+
+        assertEquals(1, s.phi(1));
+        assertEquals(12, s.phi(36));
+        assertEquals(96, s.phi(97));
+        assertEquals(-1, s.mu(30));
+        assertEquals(0, s.mu(12));
+        assertEquals(1, s.mu(35));
+        assertEquals(9, s.divisorCount(36));
+        assertEquals(28, s.divisorSum(12));
+        assertEquals(3, s.smallestPrimeFactor(45));
+        assertTrue(s.isPrime(97));
+        assertFalse(s.isPrime(1));
+    }
+
+    /**
+     * Test of segment method, of class MultiplicativeSieve.
+     */
+    @Test
+    public void segmentMatchesLinearSieve() {
+        MultiplicativeSieve.Segment expResult = MultiplicativeSieve.linear(200000);
+
+        MultiplicativeSieve.Segment result = new MultiplicativeSieve(200000).segment(0, 200000);
+
+        for (long n = 0; n < 200000; n++) {
+            assertEquals(expResult.smallestPrimeFactor(n), result.smallestPrimeFactor(n));
+            assertEquals(expResult.phi(n), result.phi(n));
+            assertEquals(expResult.mu(n), result.mu(n));
+            assertEquals(expResult.divisorCount(n), result.divisorCount(n));
+            assertEquals(expResult.divisorSum(n), result.divisorSum(n));
+        }
+    }
+
+    /**
+     * Test of forEachSegment method, of class MultiplicativeSieve.
+     */
+    @Test
+    public void segmentsComeInOrder() {
+        List<Long> expResult = Eratostene.eratosteneWithSave().take(9592);
+        List<Long> result = new ArrayList<>();
+
+        new MultiplicativeSieve(100000).forEachSegment(0, 100000, 7919, segment -> {
+            for (long prime : segment.primes()) {
+                result.add(prime);
+            }
+        });
+
+        assertEquals(expResult, result);
+    }
+}
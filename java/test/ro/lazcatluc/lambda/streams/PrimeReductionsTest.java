@@ -0,0 +1,83 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ro.lazcatluc.lambda.streams;
+
+import java.math.BigInteger;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Catalin
+ */
+public class PrimeReductionsTest {
+
+    private PrimeReductions reductions;
+
+    @Before
+    public void setUp() {
+        reductions = new PrimeReductions(new SegmentedSieve(), 10007);
+    }
+
+    /**
+     * Test of count method, of class PrimeReductions.
+     */
+    @Test
+    public void count() {
+        assertEquals(78498, reductions.count(0, 1000000));
+        assertEquals(0, reductions.count(24, 29));
+        assertEquals(78498, new PrimeReductions(new SegmentedSieve(), 10007, false).count(0, 1000000));
+    }
+
+    /**
+     * Test of summarize method, of class PrimeReductions.
+     */
+    @Test
+    public void summarize() {
+        PrimeReductions.Summary result = reductions.summarize(0, 1000000);
+
+        assertEquals(78498, result.count());
+        assertEquals(BigInteger.valueOf(37550402023l), result.sum());
+        assertEquals(2, result.first());
+        assertEquals(999983, result.last());
+        assertEquals(1, result.minGap());
+        assertEquals(114, result.maxGap());
+    }
+
+    /**
+     * Sums which overflow a long are exact.
+     */
+    @Test
+    public void sumDoesNotOverflow() {
+        long lo = 100000000000000l;
+        long hi = lo + 4000000;
+        SegmentedSieve sieve = new SegmentedSieve();
+
+        PrimeReductions.Summary result = new PrimeReductions(sieve, 1 << 20).summarize(lo, hi);
+
+        BigInteger expResult = BigInteger.ZERO;
+        for (long prime : sieve.primes(lo, hi)) {
+            expResult = expResult.add(BigInteger.valueOf(prime));
+        }
+        assertTrue(expResult.compareTo(BigInteger.valueOf(Long.MAX_VALUE)) > 0);
+        assertEquals(expResult, result.sum());
+    }
+
+    /**
+     * Test of fold method, of class PrimeReductions.
+     */
+    @Test
+    public void fold() {
+        long expResult = 0;
+        for (long prime : new SegmentedSieve().primes(0, 100000)) {
+            expResult ^= prime;
+        }
+
+        long result = reductions.fold(0, 100000, 0, (a, b) -> a ^ b);
+
+        assertEquals(expResult, result);
+    }
+}
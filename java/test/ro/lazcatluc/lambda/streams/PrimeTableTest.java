@@ -0,0 +1,82 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ro.lazcatluc.lambda.streams;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Catalin
+ */
+public class PrimeTableTest {
+
+    /**
+     * Test of stream method, of class PrimeTable.
+     */
+    @Test
+    public void streamContinuesPastTheBound() {
+        List<Long> expResult = Eratostene.eratosteneWithSave().take(1000);
+
+        List<Long> result = PrimeTable.generate(1000).stream().take(1000);
+
+        assertEquals(expResult, result);
+    }
+
+    /**
+     * A table without odd primes continues with 3.
+     */
+    @Test
+    public void streamPastTheSmallestTable() {
+        List<Long> result = PrimeTable.generate(3).stream().take(5);
+
+        assertEquals(Arrays.asList(2l, 3l, 5l, 7l, 11l), result);
+    }
+
+    /**
+     * Test of isPrime method, of class PrimeTable.
+     */
+    @Test
+    public void lookups() {
+        PrimeTable table = PrimeTable.generate(100);
+
+        assertFalse(table.isPrime(0));
+        assertFalse(table.isPrime(1));
+        assertTrue(table.isPrime(2));
+        assertTrue(table.isPrime(97));
+        assertFalse(table.isPrime(91));
+        assertEquals(25, table.count());
+    }
+
+    /**
+     * Test of write and read methods, of class PrimeTable.
+     */
+    @Test
+    public void roundTrip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrimeTable.generate(100000).write(out);
+
+        PrimeTable result = PrimeTable.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(100000, result.bound());
+        assertEquals(9592, result.count());
+    }
+
+    /**
+     * Test of embedded method, of class PrimeTable.
+     */
+    @Test
+    public void embeddedTable() {
+        PrimeTable table = PrimeTable.embedded();
+
+        assertTrue(table.bound() >= PrimeTable.DEFAULT_BOUND);
+        assertTrue(table.isPrime(1000003));
+    }
+}
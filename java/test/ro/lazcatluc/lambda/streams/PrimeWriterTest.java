@@ -0,0 +1,107 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ro.lazcatluc.lambda.streams;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Catalin
+ */
+public class PrimeWriterTest {
+
+    private static final List<Long> NUMBERS = Arrays.asList(2l, 3l, 5l, 97l, 1009l, 1234567891l, Long.MAX_VALUE);
+
+    private ByteArrayOutputStream out;
+
+    @Before
+    public void setUp() {
+        out = new ByteArrayOutputStream();
+    }
+
+    private byte[] write(PrimeWriter.Format format) throws IOException {
+        try (PrimeWriter writer = new PrimeWriter(Channels.newChannel(out), format)) {
+            for (Long number : NUMBERS) {
+                writer.write(number);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Test of the TEXT format, of class PrimeWriter.
+     */
+    @Test
+    public void text() throws IOException {
+        StringBuilder expResult = new StringBuilder();
+        for (Long number : NUMBERS) {
+            expResult.append(number).append('\n');
+        }
+
+        String result = new String(write(PrimeWriter.Format.TEXT), "US-ASCII");
+
+        assertEquals(expResult.toString(), result);
+    }
+
+    /**
+     * Test of the BINARY format, of class PrimeWriter.
+     */
+    @Test
+    public void binary() throws IOException {
+        ByteBuffer result = ByteBuffer.wrap(write(PrimeWriter.Format.BINARY));
+
+        for (Long number : NUMBERS) {
+            assertEquals((long) number, result.getLong());
+        }
+        assertFalse(result.hasRemaining());
+    }
+
+    /**
+     * Test of the GAPS format, of class PrimeWriter.
+     */
+    @Test
+    public void gaps() throws IOException {
+        byte[] bytes = write(PrimeWriter.Format.GAPS);
+        List<Long> result = new ArrayList<>();
+        long previous = 0;
+        for (int i = 0; i < bytes.length;) {
+            long gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[i++];
+                gap |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            previous += gap;
+            result.add(previous);
+        }
+
+        assertEquals(NUMBERS, result);
+    }
+
+    /**
+     * The buffer is flushed when it fills up.
+     */
+    @Test
+    public void manyNumbers() throws IOException {
+        try (PrimeWriter writer = new PrimeWriter(Channels.newChannel(out), PrimeWriter.Format.BINARY)) {
+            for (long i = 0; i < 1000000; i++) {
+                writer.write(i);
+            }
+        }
+
+        assertEquals(8000000, out.size());
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ro.lazcatluc.lambda.streams;
+
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Catalin
+ */
+public class PrimesTest {
+
+    private Primes primes;
+
+    @Before
+    public void setUp() {
+        primes = new Primes(PrimeTable.generate(10000), new SegmentedSieve(), 4096, 4);
+    }
+
+    /**
+     * Test of the plan* methods, of class Primes.
+     */
+    @Test
+    public void planner() {
+        assertEquals(Primes.Backend.TABLE, primes.planIsPrime(9973).getBackend());
+        assertEquals(Primes.Backend.MILLER_RABIN, primes.planIsPrime(10007).getBackend());
+        assertEquals(Primes.Backend.TABLE, primes.planRange(100, 10000).getBackend());
+        assertEquals(Primes.Backend.SEGMENTED_SIEVE, primes.planRange(20000, 24000).getBackend());
+        Primes.Plan parallel = primes.planRange(0, 100000);
+        assertEquals(Primes.Backend.PARALLEL_SEGMENTED_SIEVE, parallel.getBackend());
+        assertEquals(25, parallel.getSegments());
+        assertEquals(4, parallel.getParallelism());
+    }
+
+    /**
+     * Test of first method, of class Primes.
+     */
+    @Test
+    public void first() {
+        List<Long> expResult = Eratostene.eratosteneWithSave().take(5000);
+
+        long[] small = primes.first(100);
+        long[] large = primes.first(5000);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals((long) expResult.get(i), small[i]);
+        }
+        for (int i = 0; i < 5000; i++) {
+            assertEquals((long) expResult.get(i), large[i]);
+        }
+    }
+
+    /**
+     * Test of count and range methods, of class Primes.
+     */
+    @Test
+    public void countAndRange() {
+        assertEquals(1229, primes.count(0, 10000));
+        assertEquals(9592, primes.count(0, 100000));
+        assertEquals(primes.count(3, 97), primes.range(3, 97).length);
+        assertArrayEquals(new long[]{3, 5, 7}, primes.range(3, 11));
+        assertArrayEquals(new SegmentedSieve().primes(9000, 50000), primes.range(9000, 50000));
+    }
+
+    /**
+     * Empty ranges past the table have no primes and are
+     * planned on a single thread.
+     */
+    @Test
+    public void emptyRange() {
+        assertEquals(0, primes.count(20000, 20000));
+        assertEquals(0, primes.range(20000, 20000).length);
+        assertEquals(0, primes.count(30000, 20000));
+        assertEquals(0, primes.range(30000, 20000).length);
+        assertEquals(1, primes.planRange(20000, 20000).getParallelism());
+    }
+
+    /**
+     * Test of isPrime method, of class Primes.
+     */
+    @Test
+    public void isPrime() {
+        assertTrue(primes.isPrime(2));
+        assertFalse(primes.isPrime(1));
+        assertTrue(primes.isPrime(1000000007));
+        assertFalse(primes.isPrime(1000000007l * 998244353));
+        assertTrue(primes.isPrime(9223372036854775783l));
+        assertFalse(primes.isPrime(3215031751l));
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ro.lazcatluc.lambda.streams;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Catalin
+ */
+public class SegmentedSieveTest {
+
+    /**
+     * Test of primes method, of class SegmentedSieve.
+     */
+    @Test
+    public void firstTenPrimes() {
+        long[] expResult = {2, 3, 5, 7, 11, 13, 17, 19, 23, 29};
+
+        long[] result = new SegmentedSieve().primes(0, 30);
+
+        assertArrayEquals(expResult, result);
+    }
+
+    /**
+     * Sieving a range away from zero gives the same primes
+     * as the saved prime stream.
+     */
+    @Test
+    public void rangeMatchesSavedPrimes() {
+        List<Long> primes = Eratostene.eratosteneWithSave().take(20000);
+        long[] expResult = primes.stream().filter(p -> p >= 100000 && p < 200000).mapToLong(p -> p).toArray();
+
+        long[] result = new SegmentedSieve().primes(100000, 200000);
+
+        assertArrayEquals(expResult, result);
+    }
+
+    /**
+     * Test of sieve method, of class SegmentedSieve.
+     */
+    @Test
+    public void sieveMarksPrimeOffsets() {
+        List<Integer> expResult = Arrays.asList(1, 3, 7, 9);
+        List<Integer> result = new ArrayList<>();
+
+        new SegmentedSieve().sieve(100, 110).stream().forEach(result::add);
+
+        assertEquals(expResult, result);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ro.lazcatluc.lambda.streams;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Catalin
+ */
+public class ShardCoordinatorTest {
+
+    private Path workDir;
+
+    @Before
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("shards");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.delete(workDir);
+    }
+
+    /**
+     * Test of run method, of class ShardCoordinator.
+     */
+    @Test
+    public void shardsAreMergedInOrder() throws IOException, InterruptedException {
+        List<Long> expResult = Eratostene.eratosteneWithSave().take(9592);
+        List<Long> result = new ArrayList<>();
+
+        long count = new ShardCoordinator(2, 2, workDir).run(0, 100000, 15000, result::add);
+
+        assertEquals(9592, count);
+        assertEquals(expResult, result);
+    }
+
+    /**
+     * Test of count method, of class ShardCoordinator.
+     */
+    @Test
+    public void countLeavesNoShardFiles() throws IOException, InterruptedException {
+        long count = new ShardCoordinator(3, 2, workDir).count(0, 1000000, 100000);
+
+        assertEquals(78498, count);
+        try (Stream<Path> files = Files.list(workDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    /**
+     * A shard whose last worker segment holds no prime is read back
+     * whole; the worker sieves segments of 2^22 numbers.
+     */
+    @Test
+    public void lastSegmentWithoutPrimes() throws IOException, InterruptedException {
+        long hi = (1 << 22) + 1;
+        long[] count = {0};
+
+        long result = new ShardCoordinator(1, 1, workDir).run(0, hi, hi, prime -> count[0]++);
+
+        assertEquals(new SegmentedSieve().sieve(0, hi).cardinality(), result);
+        assertEquals(result, count[0]);
+    }
+
+    /**
+     * A shard whose worker fails is retried, and the files of the
+     * failed attempt are removed. The first worker fails because its
+     * temporary shard file is taken by a directory, which the
+     * coordinator deletes before the second attempt.
+     */
+    @Test
+    public void failedWorkerIsRetried() throws IOException, InterruptedException {
+        List<Long> expResult = Eratostene.eratosteneWithSave().take(9592);
+        List<Long> result = new ArrayList<>();
+        Files.createDirectory(workDir.resolve("shard-50000-100000.tmp"));
+
+        long count = new ShardCoordinator(2, 2, workDir).run(0, 100000, 50000, result::add);
+
+        assertEquals(9592, count);
+        assertEquals(expResult, result);
+        try (Stream<Path> files = Files.list(workDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+}